@@ -2,6 +2,7 @@ import com.googlecode.lanterna.SGR;
 import com.googlecode.lanterna.TerminalPosition;
 import com.googlecode.lanterna.TextColor;
 import com.googlecode.lanterna.input.KeyStroke;
+import com.googlecode.lanterna.input.KeyType;
 import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
 import com.googlecode.lanterna.terminal.Terminal;
 import org.apfloat.Apfloat;
@@ -224,13 +225,16 @@ public class Calculator {
             } else { // vars and constants
                 switch(func) {
                     case "ans": {
-                        String last = history.get(history.size() - historyIndex);
+                        int index = history.size() - historyIndex;
+                        if (index < history.sessionStart()) { // earlier sessions used other variables
+                            x = Apfloat.ZERO;
+                            break;
+                        }
+                        String last = history.get(index);
                         String str = handleEqualSigns(last, precision, historyIndex + 1);
                         if (str == null) {
-                            x = history.size() - historyIndex >= 0
-                                    ? new Calculator(last.replaceAll("--[^\\s]+", ""), precision)
-                                    .setHistoryIndex(historyIndex + 1).calculate()
-                                    : Apfloat.ZERO;
+                            x = new Calculator(last.replaceAll("--[^\\s]+", ""), precision)
+                                    .setHistoryIndex(historyIndex + 1).calculate();
                         } else if (str.equals("true")) {
                             x = new Apfloat(1, precision);
                         } else if (str.equals("false")) {
@@ -286,21 +290,95 @@ public class Calculator {
         return e;
     }
 
-    private static final List<String> history = new LinkedList<>();
+    private static final History history = new History();
 
     public static void main(String[] args) {
         try {
             Terminal terminal = new DefaultTerminalFactory(System.out, System.in, StandardCharsets.UTF_8).createTerminal();
             if (args.length == 0) {
+                history.loadInBackground();
                 writeToTerminal(terminal, "> ", TextColor.ANSI.GREEN);
 
                 int historyIndex = 0;
 
+                // reverse search state, searchQuery is null if not searching
+                StringBuilder searchQuery = null;
+                String lastSearchQuery = "";
+                int searchIndex = -1;
+                boolean searchFailed = false;
+
                 List<Character> chars = new LinkedList<>();
                 while (true) {
                     boolean up = true;
                     KeyStroke stroke = terminal.pollInput();
                     if (stroke != null) {
+                        boolean ctrlR = stroke.getKeyType() == KeyType.Character && stroke.isCtrlDown()
+                                && Character.valueOf('r').equals(stroke.getCharacter());
+                        if (searchQuery != null) {
+                            boolean handled = true;
+                            if (ctrlR) {
+                                if (searchQuery.length() == 0) searchQuery.append(lastSearchQuery);
+                                if (searchQuery.length() > 0) {
+                                    int i = history.searchBackwards(searchQuery.toString(),
+                                            searchIndex == -1 ? history.size() - 1 : searchIndex - 1);
+                                    searchFailed = i == -1;
+                                    if (i != -1) searchIndex = i;
+                                }
+                            } else if (stroke.getKeyType() == KeyType.Character && !stroke.isCtrlDown()) {
+                                searchQuery.append(stroke.getCharacter());
+                                // keep the current match if it still matches
+                                int i = history.searchBackwards(searchQuery.toString(),
+                                        searchIndex == -1 ? history.size() - 1 : searchIndex);
+                                searchFailed = i == -1;
+                                if (i != -1) searchIndex = i;
+                            } else if (stroke.getKeyType() == KeyType.Backspace) {
+                                if (searchQuery.length() > 0) searchQuery.setLength(searchQuery.length() - 1);
+                                // the current match still matches the shorter query
+                                int i = searchQuery.length() == 0 ? searchIndex
+                                        : history.searchBackwards(searchQuery.toString(),
+                                        searchIndex == -1 ? history.size() - 1 : searchIndex);
+                                searchFailed = searchQuery.length() > 0 && i == -1;
+                                if (i != -1) searchIndex = i;
+                            } else {
+                                handled = false;
+                            }
+
+                            if (handled) {
+                                String prompt = (searchFailed ? "(failed reverse-i-search)`" : "(reverse-i-search)`")
+                                        + searchQuery + "': ";
+                                writeToTerminal(terminal, prompt, TextColor.ANSI.GREEN);
+                                if (searchIndex != -1) {
+                                    writeToTerminal(terminal, history.get(searchIndex), null, null, prompt.length());
+                                }
+                                terminal.flush();
+                                continue;
+                            }
+
+                            // any other key ends the search, escape drops the match
+                            if (searchIndex != -1 && stroke.getKeyType() != KeyType.Escape) {
+                                chars.clear();
+                                for (char ch : history.get(searchIndex).toCharArray()) {
+                                    chars.add(ch);
+                                }
+                                historyIndex = history.size() - searchIndex;
+                            }
+                            if (searchQuery.length() > 0) lastSearchQuery = searchQuery.toString();
+                            searchQuery = null;
+                            writeToTerminal(terminal, "> ", TextColor.ANSI.GREEN);
+                            writeToTerminal(terminal, charsToString(chars), null, null, 2);
+                            if (stroke.getKeyType() == KeyType.Escape) {
+                                terminal.flush();
+                                continue;
+                            }
+                        } else if (ctrlR) {
+                            searchQuery = new StringBuilder();
+                            searchIndex = -1;
+                            searchFailed = false;
+                            writeToTerminal(terminal, "(reverse-i-search)`': ", TextColor.ANSI.GREEN);
+                            terminal.flush();
+                            continue;
+                        }
+
                         switch (stroke.getKeyType()) {
                             case Backspace: {
                                 int x = terminal.getCursorPosition().getColumn() - 3;
@@ -370,6 +448,8 @@ public class Calculator {
                                         calculate(terminal, line);
                                     } catch (RuntimeException e) {
                                         writeToTerminal(terminal, e.getMessage() + "\n", TextColor.ANSI.RED);
+                                    } catch (StackOverflowError e) { // e.g. too many nested "ans"
+                                        writeToTerminal(terminal, "Expression is nested too deeply\n", TextColor.ANSI.RED);
                                     }
                                     history.add(line);
                                 }
@@ -426,6 +506,7 @@ public class Calculator {
     }
 
     private final static String HELP_STRING = "To quit write 'quit'/'exit'.\n" +
+            "To search the history press Ctrl+R.\n" +
             "You can use following functions (e.g. 'sqrt(2)'):\n"
             + " - sqrt\n"
             + " - cbrt\n"
@@ -0,0 +1,283 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+
+/**
+ * Input history with a fixed capacity.
+ * Entries are kept in a ring buffer (index 0 is the oldest entry) and appended to a file,
+ * which is read in the background after {@link #loadInBackground()} or the first time the history is accessed.
+ * A trigram index makes reverse searches independent of the number of stored entries.
+ * <p>
+ * Several calculators can share the file. Compaction replaces the file, so the others reopen it
+ * before their next write. Entries another process appends while the file is being compacted are lost.
+ * Replacements are detected by the file key, which some file systems don't provide (e.g. on Windows).
+ * There, once another calculator has compacted the file, the entries this one appends are lost.
+ */
+public class History {
+    private static final int DEFAULT_CAPACITY = 100_000;
+    private static final Path DEFAULT_FILE = Paths.get(System.getProperty("user.home"), ".calculator_history");
+
+    private final String[] entries;
+    private final Path file;
+    // trigram -> sequence numbers of the entries containing it (ascending)
+    private final HashMap<Long, IntQueue> index = new HashMap<>();
+
+    private int head = 0, size = 0;
+    private int firstSeq = 0; // sequence number of the entry at index 0
+    private int sessionSeq = 0; // sequence number of the first entry not read from the file
+    private boolean loaded = false;
+    private BufferedWriter writer;
+    private Object fileKey; // identity of the file the writer appends to
+
+    History() {
+        this(DEFAULT_FILE, DEFAULT_CAPACITY);
+    }
+
+    History(Path file, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity has to be positive: " + capacity);
+        this.entries = new String[capacity];
+        this.file = file;
+    }
+
+    public void loadInBackground() {
+        Thread thread = new Thread(this::ensureLoaded, "history-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return size;
+    }
+
+    /**
+     * @return the index of the first entry added after reading the file
+     */
+    public synchronized int sessionStart() {
+        ensureLoaded();
+        return Math.max(0, sessionSeq - firstSeq);
+    }
+
+    public synchronized String get(int i) {
+        ensureLoaded();
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        return entries[(head + i) % entries.length];
+    }
+
+    public synchronized void add(String entry) {
+        ensureLoaded();
+        push(entry);
+        if (writer != null) {
+            try {
+                // another process could have compacted (replaced) the file
+                if (!Files.exists(file) || (fileKey != null && !fileKey.equals(fileKey()))) {
+                    writer.close();
+                    openWriter();
+                }
+                writer.write(entry);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                closeWriter(); // keep the history in memory only
+            }
+        }
+    }
+
+    /**
+     * Searches for the newest entry containing the query, starting at index from (inclusive) going to older entries.
+     * @return the index of the found entry or -1 if no entry matches
+     */
+    public synchronized int searchBackwards(String query, int from) {
+        ensureLoaded();
+        from = Math.min(from, size - 1);
+        if (from < 0) return -1;
+        if (query.length() < 3) {
+            for (int i = from; i >= 0; i--) {
+                if (get(i).contains(query)) return i;
+            }
+            return -1;
+        }
+
+        // only entries containing every trigram of the query can match, so walk the shortest posting list
+        IntQueue candidates = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            IntQueue postings = index.get(trigram(query, i));
+            if (postings == null) return -1;
+            if (candidates == null || postings.size() < candidates.size()) {
+                candidates = postings;
+            }
+        }
+        int fromSeq = firstSeq + from;
+        for (int i = candidates.floorIndex(fromSeq); i >= 0; i--) {
+            int idx = candidates.get(i) - firstSeq;
+            if (get(idx).contains(query)) return idx;
+        }
+        return -1;
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        int lines = 0;
+        if (Files.isRegularFile(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        push(line);
+                        lines++;
+                    }
+                }
+            } catch (IOException e) {
+                sessionSeq = firstSeq + size;
+                return; // unreadable history file, don't write to it either
+            }
+        }
+        sessionSeq = firstSeq + size;
+        if (lines > 2 * entries.length) {
+            try {
+                compact();
+            } catch (IOException ignored) {} // keep appending to the uncompacted file
+        }
+        try {
+            openWriter();
+        } catch (IOException e) {
+            closeWriter();
+        }
+    }
+
+    // rewrites the file with only the entries that are still in the buffer
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < size; i++) {
+                out.write(get(i));
+                out.newLine();
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private void openWriter() throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileKey = fileKey();
+    }
+
+    private Object fileKey() throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {}
+        }
+        writer = null;
+    }
+
+    private void push(String entry) {
+        if (size == entries.length) {
+            String oldest = entries[head];
+            entries[head] = null;
+            head = (head + 1) % entries.length;
+            size--;
+            unindex(oldest, firstSeq++);
+        }
+        entries[(head + size) % entries.length] = entry;
+        index(entry, firstSeq + size);
+        size++;
+    }
+
+    private void index(String entry, int seq) {
+        for (int i = 0; i + 3 <= entry.length(); i++) {
+            IntQueue postings = index.computeIfAbsent(trigram(entry, i), k -> new IntQueue());
+            if (postings.size() == 0 || postings.last() != seq) postings.add(seq);
+        }
+    }
+
+    // the evicted entry is always the oldest, so it is at the front of every posting list containing it
+    private void unindex(String entry, int seq) {
+        for (int i = 0; i + 3 <= entry.length(); i++) {
+            Long key = trigram(entry, i);
+            IntQueue postings = index.get(key);
+            if (postings != null && postings.size() > 0 && postings.first() == seq) {
+                postings.removeFirst();
+                if (postings.size() == 0) index.remove(key);
+            }
+        }
+    }
+
+    private static long trigram(String str, int i) {
+        return ((long) str.charAt(i) << 32) | ((long) str.charAt(i + 1) << 16) | str.charAt(i + 2);
+    }
+
+    /**
+     * Growable ring buffer of ascending ints.
+     */
+    static class IntQueue {
+        private int[] values = new int[4];
+        private int head = 0, size = 0;
+
+        int size() {
+            return size;
+        }
+
+        int get(int i) {
+            return values[(head + i) % values.length];
+        }
+
+        int first() {
+            return get(0);
+        }
+
+        int last() {
+            return get(size - 1);
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] grown = new int[values.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = get(i);
+                }
+                values = grown;
+                head = 0;
+            }
+            values[(head + size++) % values.length] = value;
+        }
+
+        void removeFirst() {
+            head = (head + 1) % values.length;
+            size--;
+        }
+
+        // index of the largest value <= value or -1
+        int floorIndex(int value) {
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid) <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoryTest {
+    @TempDir
+    Path dir;
+
+    private Path file() {
+        return dir.resolve("history");
+    }
+
+    @Test
+    void evictsOldestEntries() {
+        History history = new History(file(), 3);
+        for (String entry : new String[]{"a", "b", "c", "d"}) {
+            history.add(entry);
+        }
+        assertEquals(3, history.size());
+        assertEquals("b", history.get(0));
+        assertEquals("d", history.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.get(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.get(-1));
+    }
+
+    @Test
+    void evictedEntriesAreNotFound() {
+        History history = new History(file(), 3);
+        for (String entry : new String[]{"aaaa", "abc1", "abc2", "abc3", "xyz"}) {
+            history.add(entry);
+        }
+        // "aaaa" and "abc1" were evicted, "aaaa" contains the same trigram twice
+        assertEquals(-1, history.searchBackwards("aaa", 2));
+        assertEquals(-1, history.searchBackwards("abc1", 2));
+        assertEquals(1, history.searchBackwards("abc", 2));
+        assertEquals(0, history.searchBackwards("abc", 0));
+        assertEquals(2, history.searchBackwards("xyz", 2));
+    }
+
+    @Test
+    void searchesAfterManyEvictions() {
+        History history = new History(file(), 3);
+        for (int i = 0; i < 50; i++) {
+            history.add("abc" + i);
+        }
+        // the buffer holds abc47, abc48, abc49
+        assertEquals(2, history.searchBackwards("abc", 2));
+        assertEquals(1, history.searchBackwards("abc4", 1));
+        assertEquals(0, history.searchBackwards("c47", 2));
+        assertEquals(-1, history.searchBackwards("c46", 2));
+    }
+
+    @Test
+    void searchesShortAndLongQueries() {
+        History history = new History(file(), 10);
+        for (String entry : new String[]{"1+1", "sqrt(2)", "2*3", "sqrt(9)"}) {
+            history.add(entry);
+        }
+        // shorter than a trigram
+        assertEquals(3, history.searchBackwards("sq", 3));
+        assertEquals(1, history.searchBackwards("sq", 2));
+        assertEquals(2, history.searchBackwards("*", 3));
+        assertEquals(-1, history.searchBackwards("zz", 3));
+        // using the trigram index
+        assertEquals(3, history.searchBackwards("sqrt", 3));
+        assertEquals(1, history.searchBackwards("sqrt", 2));
+        assertEquals(1, history.searchBackwards("t(2", 3));
+        assertEquals(-1, history.searchBackwards("(9)", 2));
+        assertEquals(-1, history.searchBackwards("zzz", 3));
+        // from is clamped to the last entry
+        assertEquals(3, history.searchBackwards("sqrt", 100));
+        assertEquals(-1, history.searchBackwards("sqrt", -1));
+    }
+
+    @Test
+    void searchesEmptyHistory() {
+        History history = new History(file(), 3);
+        assertEquals(-1, history.searchBackwards("a", 0));
+        assertEquals(-1, history.searchBackwards("abc", 0));
+    }
+
+    @Test
+    void loadsPersistedEntries() throws IOException {
+        History history = new History(file(), 3);
+        history.add("1+1");
+        history.add("2*3");
+        assertEquals(Arrays.asList("1+1", "2*3"), Files.readAllLines(file()));
+
+        History loaded = new History(file(), 3);
+        assertEquals(2, loaded.size());
+        assertEquals("2*3", loaded.get(1));
+        assertEquals(0, loaded.searchBackwards("1+1", 1));
+    }
+
+    @Test
+    void sessionStartsAfterLoadedEntries() throws IOException {
+        Files.write(file(), Arrays.asList("1", "2"));
+        History history = new History(file(), 3);
+        assertEquals(2, history.sessionStart());
+        history.add("3");
+        assertEquals(2, history.sessionStart());
+        history.add("4"); // evicts "1"
+        assertEquals(1, history.sessionStart());
+        history.add("5");
+        history.add("6");
+        assertEquals(0, history.sessionStart());
+        assertEquals(0, new History(dir.resolve("missing"), 3).sessionStart());
+    }
+
+    @Test
+    void loadsInBackground() throws IOException {
+        Files.write(file(), Arrays.asList("1", "2"));
+        History history = new History(file(), 3);
+        history.loadInBackground();
+        history.add("3");
+        assertEquals(Arrays.asList("1", "2", "3"), Arrays.asList(history.get(0), history.get(1), history.get(2)));
+        assertEquals(2, history.sessionStart());
+    }
+
+    @Test
+    void skipsEmptyLines() throws IOException {
+        Files.write(file(), Arrays.asList("a", "", "b"));
+        History history = new History(file(), 3);
+        assertEquals(2, history.size());
+        assertEquals("b", history.get(1));
+    }
+
+    @Test
+    void compactsLargeFile() throws IOException {
+        Files.write(file(), Arrays.asList("1", "2", "3", "4", "5", "6", "7"));
+        History history = new History(file(), 3);
+        assertEquals(3, history.size());
+        assertEquals(Arrays.asList("5", "6", "7"), Files.readAllLines(file()));
+
+        history.add("8");
+        assertEquals(Arrays.asList("5", "6", "7", "8"), Files.readAllLines(file()));
+    }
+
+    @Test
+    void doesNotCompactUpToTwiceTheCapacity() throws IOException {
+        Files.write(file(), Arrays.asList("1", "2", "3", "4", "5", "6"));
+        History history = new History(file(), 3);
+        assertEquals(3, history.size());
+        assertEquals(6, Files.readAllLines(file()).size());
+    }
+
+    @Test
+    void appendsWhenCompactionFails() throws IOException {
+        Files.write(file(), Arrays.asList("1", "2", "3", "4", "5", "6", "7"));
+        // the temporary file can't be created
+        Files.createDirectories(dir.resolve("history.tmp").resolve("blocker"));
+        History history = new History(file(), 3);
+        history.add("8");
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8"), Files.readAllLines(file()));
+    }
+
+    @Test
+    void reopensReplacedFile() throws IOException {
+        History history = new History(file(), 3);
+        history.add("a");
+
+        // another process compacting the file
+        Path tmp = dir.resolve("history.tmp");
+        Files.write(tmp, Collections.singletonList("b"));
+        Files.move(tmp, file(), StandardCopyOption.REPLACE_EXISTING);
+
+        history.add("c");
+        assertEquals(Arrays.asList("b", "c"), Files.readAllLines(file()));
+    }
+
+    @Test
+    void floorIndexWhenWrapped() {
+        History.IntQueue queue = new History.IntQueue();
+        for (int i = 0; i < 4; i++) {
+            queue.add(i * 10);
+        }
+        queue.removeFirst();
+        queue.removeFirst();
+        queue.add(40);
+        queue.add(50); // 20, 30, 40, 50 with the head in the middle of the array
+        assertEquals(4, queue.size());
+        assertEquals(20, queue.first());
+        assertEquals(50, queue.last());
+        assertEquals(-1, queue.floorIndex(19));
+        assertEquals(0, queue.floorIndex(20));
+        assertEquals(1, queue.floorIndex(39));
+        assertEquals(2, queue.floorIndex(40));
+        assertEquals(3, queue.floorIndex(100));
+
+        queue.add(60); // grows while wrapped
+        assertEquals(5, queue.size());
+        assertEquals(20, queue.get(0));
+        assertEquals(60, queue.get(4));
+        assertEquals(4, queue.floorIndex(60));
+        assertEquals(3, queue.floorIndex(59));
+    }
+}